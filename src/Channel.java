@@ -22,24 +22,60 @@ public class Channel {
      *  @param name Name of the channel
      */
     public Channel(String name) {
+        init(name, new LinkedHashSet<ClientThread>());
+    }
+
+    /** Creates a new channel, sized for the number of clients expected to join it.
+     *  Used when restoring channels from a ServerSnapshot.
+     *  @param name          Name of the channel
+     *  @param expectedSize  The number of clients expected to join the channel
+     */
+    public Channel(String name, int expectedSize) {
+        init(name, new LinkedHashSet<ClientThread>(Registry.capacityFor(expectedSize)));
+    }
+
+    private void init(String name, LinkedHashSet<ClientThread> clients) {
         this.name = name;
-        CHANNEL_NAMES.put(name, this);
-        clients = new LinkedHashSet<ClientThread>();
-        CHANNEL_CLIENTS.put(this, clients);
+        this.clients = clients;
+        synchronized (Registry.LOCK) {
+            CHANNEL_NAMES.put(name, this);
+            CHANNEL_CLIENTS.put(this, clients);
+        }
+    }
+
+    /** Gets the channel with the given name, creating it if it does not exist yet.
+     *  The lookup and creation happen under Registry.LOCK, so clients joining a new
+     *  channel at the same time all join the same Channel.
+     *  @param  channelName The name of the channel
+     *  @return The channel with the given name
+     */
+    public static Channel getOrCreate(String channelName) {
+        synchronized (Registry.LOCK) {
+            Channel channel = CHANNEL_NAMES.get(channelName);
+            if (channel == null) {
+                channel = new Channel(channelName);
+            }
+            return channel;
+        }
     }
 
     /** Adds a client to a channel.
-     *  @param client The client to be added to this channel
+     *  @param  client The client to be added to this channel
+     *  @return True if the client was added, False if it was already in this channel
      */
-    public void addClient(ClientThread client) {
-        clients.add(client);
+    public boolean addClient(ClientThread client) {
+        synchronized (Registry.LOCK) {
+            return clients.add(client);
+        }
     }
 
     /** Removes a client from this channel.
      *  @param client The client to be removed from this channel
      */
     public void removeClient(ClientThread client) {
-        clients.remove(client);
+        synchronized (Registry.LOCK) {
+            clients.remove(client);
+        }
     }
     /** Notifies all clients in a channel of a message, used as a helper function
      *  by commands JOIN and PART.
@@ -2,10 +2,12 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.BufferedReader;
 import java.util.HashSet;
 import java.net.Socket;
+import java.nio.charset.StandardCharsets;
 
 /** This class represents the connection thread that allows clients to connect
  *  to an IrcServer.
@@ -16,10 +18,12 @@ public class ClientThread implements Runnable {
     private Socket connection;
     private InputStream inputStream;
     private OutputStream outputStream;
+    private ReplyEncoder.Buffer replyStream;
     private BufferedReader reader;
     private PrintWriter writer;
 
     private String nickName;
+    private volatile byte[] nickBytes;
     private String userName;
     private String realName;
     private HashSet<Channel> channels;
@@ -43,7 +47,8 @@ public class ClientThread implements Runnable {
             inputStream = connection.getInputStream();
             outputStream = connection.getOutputStream();
             reader = new BufferedReader(new InputStreamReader(inputStream));
-            writer = new PrintWriter(outputStream, true);
+            replyStream = new ReplyEncoder.Buffer(outputStream);
+            writer = new PrintWriter(new OutputStreamWriter(replyStream, StandardCharsets.UTF_8), true);
 
             for (;;) {
                 String userInput = reader.readLine();
@@ -60,15 +65,50 @@ public class ClientThread implements Runnable {
     /** Prints a message to the client's terminal.
      * @param message The messsage to write to the client's terminal
      */
-    public void printMessage(String message) {
+    public synchronized void printMessage(String message) {
         writer.println(message);
     }
 
-    /** Returns the writer object.
-     *  @return This ClientThread's writer
+    /** Prints a numeric reply from the IrcServer to the client's terminal.
+     *  @param numeric  The numeric reply to be sent
+     *  @param param    A middle parameter of the reply, or null if there is none
+     *  @param trailing The trailing parameter of the reply, or null if there is none
      */
-    public PrintWriter getWriter() {
-        return writer;
+    public synchronized void printReply(ReplyEncoder.Numeric numeric, String param, String trailing) {
+        try {
+            server.getReplyEncoder().writePrefix(replyStream, numeric, nickBytes);
+            if (param != null) {
+                ReplyEncoder.writeParam(replyStream, param);
+            }
+            if (trailing != null) {
+                ReplyEncoder.writeTrailing(replyStream, trailing);
+            }
+            ReplyEncoder.writeEnd(replyStream);
+        } catch (IOException ioe) {
+            System.out.println("Reply could not be sent.");
+        }
+    }
+
+    /** Prints the welcome reply sent once this client has registered. */
+    public synchronized void printWelcomeReply() {
+        try {
+            server.getReplyEncoder().writeWelcome(replyStream, nickBytes);
+        } catch (IOException ioe) {
+            System.out.println("Reply could not be sent.");
+        }
+    }
+
+    /** Prints the NAMES reply for a channel, writing the nickname of each member
+     *  straight to the client's terminal.
+     *  @param channelName The name of the channel
+     *  @param members     The clients connected to the channel
+     */
+    public synchronized void printNamesReply(String channelName, Iterable<ClientThread> members) {
+        try {
+            server.getReplyEncoder().writeNames(replyStream, nickBytes, channelName, members);
+        } catch (IOException ioe) {
+            System.out.println("Reply could not be sent.");
+        }
     }
 
     /** Returns the reader object.
@@ -83,6 +123,7 @@ public class ClientThread implements Runnable {
      */
     public void setNickName(String nickName) {
         this.nickName = nickName;
+        nickBytes = ReplyEncoder.encode(nickName);
     }
     /** Returns the client's nickname.
      * @return This client's nickname
@@ -91,6 +132,14 @@ public class ClientThread implements Runnable {
         return nickName;
     }
 
+    /** Returns the client's nickname as it is written in replies. The array is
+     *  shared with every reply to or about this client, so it must not be modified.
+     *  @return This client's encoded nickname, or null if it is not set
+     */
+    byte[] getNickBytes() {
+        return nickBytes;
+    }
+
     /** Returns the IrcServer that this ClientThread is connected to.
      * @return This ClientThread's IrcServer
      */
@@ -162,7 +211,7 @@ public class ClientThread implements Runnable {
     }
 
     /** Closes all streams, and the reader, writer, and socket of this ClientThread. */
-    public void closeAll() throws IOException {
+    public synchronized void closeAll() throws IOException {
         inputStream.close();
         outputStream.close();
         reader.close();
@@ -3,8 +3,6 @@ import java.util.regex.Pattern;
 import java.io.IOException;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
-import java.util.ArrayList;
-import java.util.stream.Collectors;
 import java.time.LocalDateTime;
 
 /** This class represents the commands that will be sent by a client to an IrcServer. */
@@ -76,18 +74,19 @@ public class Command {
         if (Pattern.matches("[a-zA-z_]{1}\\w{0,8}", messageArgs)) {
             client.setNickName(messageArgs);
             client.getIrcServer().addNamedClient(client.getNickName(), client);
+            if (client.isRegistered()) {
+                client.getIrcServer().rejoinRestoredChannels(client);
+            }
         }
         else {
-            String nickError = createErrorMessage("Invalid nickname");
-            client.printMessage(nickError);
+            printError("Invalid nickname");
         }
     }
 
     private void user() {
         // Nickname not yet set
         if (client.getNickName() == null) {
-            String noNickNameError = createErrorMessage("You must have a nickname before you can register.");
-            client.printMessage(noNickNameError);
+            printError("You must have a nickname before you can register.");
             return;
         }
 
@@ -96,21 +95,21 @@ public class Command {
 
         // real name is empty, or no colon supplied before it
         if (realName == "") {
-            client.printMessage(createErrorMessage("Invalid arguments to USER command"));
+            printError("Invalid arguments to USER command");
             return;
         }
         // incorrect number of arguments given
         String[] userNameArgs = args.split(" ");
         final int correctNumberOfArguments = 3;
         if (userNameArgs.length != correctNumberOfArguments) {
-            client.printMessage(createErrorMessage("Not enough arguments"));
+            printError("Not enough arguments");
             return;
         }
 
         String userName = userNameArgs[0];
         // check username not already set
         if (client.getUserName() != null) {
-            client.printMessage(createErrorMessage("You are already registered"));
+            printError("You are already registered");
             return;
         }
 
@@ -121,9 +120,8 @@ public class Command {
         if (Pattern.matches("[^\\s]+", userName) && middleArgsMatch) {
             client.setUserName(userName);
             client.setRealName(realName);
-            String registrationReply = ":" + client.getIrcServerName() + " 001 " + client.getNickName()
-                + " :Welcome to the IRC network, " + client.getNickName();
-            client.printMessage(registrationReply);
+            client.printWelcomeReply();
+            client.getIrcServer().rejoinRestoredChannels(client);
         }
     }
 
@@ -155,21 +153,16 @@ public class Command {
         final String channelNameRegex = "^#[\\w]+";
 
         if (!client.isRegistered()) {
-            client.printMessage(createErrorMessage("You need to register first"));
+            printError("You need to register first");
             return;
         }
 
         if (!Pattern.matches(channelNameRegex, channelName)) {
-            client.printMessage(createErrorMessage("Invalid channel name"));
+            printError("Invalid channel name");
             return;
         }
         // create channel if it does not exist
-        Channel channel;
-        if (!Channel.channelExists(channelName)) {
-            channel = new Channel(channelName);
-        } else {
-            channel = Channel.CHANNEL_NAMES.get(channelName);
-        }
+        Channel channel = Channel.getOrCreate(channelName);
 
         channel.addClient(client);
         client.addToChannel(channel);
@@ -180,12 +173,12 @@ public class Command {
         final String channelName = messageArgs;
         // check channel exists
         if (!Channel.channelExists(channelName)) {
-            client.printMessage(createErrorMessage("No channel exists with that name"));
+            printError("No channel exists with that name");
             return;
         }
         // check registration
         if (!client.isRegistered()) {
-            client.printMessage(createErrorMessage("You need to register first"));
+            printError("You need to register first");
             return;
         }
 
@@ -199,11 +192,11 @@ public class Command {
     private void privateMessage() {
 
         if (!client.isRegistered()) {
-            client.printMessage(createErrorMessage("You need to register first"));
+            printError("You need to register first");
             return;
         }
         if (!messageArgs.contains(":")) {
-            client.printMessage(createErrorMessage("Invalid arguments to PRIVMSG command"));
+            printError("Invalid arguments to PRIVMSG command");
             return;
         }
 
@@ -220,7 +213,7 @@ public class Command {
                 + " " + channel.getName() + " :" + message);
             }
             else {
-                client.printMessage(createErrorMessage("No channel exists with that name"));
+                printError("No channel exists with that name");
                 return;
             }
         }
@@ -229,7 +222,7 @@ public class Command {
         ClientThread recipient = client.getIrcServer().getNamedClient(target);
         System.out.println(target);
         if (recipient == null) {
-            client.printMessage(createErrorMessage("No user exists with that name"));
+            printError("No user exists with that name");
             return;
         }
         else {
@@ -241,11 +234,9 @@ public class Command {
 
     private void list() {
         for (String channelName : Channel.getChannelNames()) {
-            client.printMessage(":" + client.getIrcServerName() + " 322 "
-                + client.getNickName() + " " + channelName);
+            client.printReply(ReplyEncoder.Numeric.LIST, channelName, null);
         }
-        client.printMessage(":" + client.getIrcServerName() + " 323 "
-                + client.getNickName() + " :End of LIST");
+        client.printReply(ReplyEncoder.Numeric.LIST_END, null, "End of LIST");
     }
 
     private void names() {
@@ -253,38 +244,23 @@ public class Command {
         Channel channel = Channel.getChannelByName(channelName);
         LinkedHashSet<ClientThread> clients = Channel.getClients(channel);
 
-        ArrayList<String> clientNickNames = new ArrayList<String>();
-
-        for (ClientThread cl: clients) {
-            clientNickNames.add(cl.getNickName());
-        }
-
-        final String nickNames = clientNickNames.stream().collect(Collectors.joining(" "));
-        client.printMessage(":" + client.getIrcServerName() + " 353 "
-            + client.getNickName() + " = " + channelName + " :" + nickNames);
+        client.printNamesReply(channelName, clients);
     }
 
     private void time() {
         LocalDateTime now = LocalDateTime.now();
         client.printMessage(now.toString());
         System.out.println(now.toString());
-        String nickName = (client.getNickName() == null) ? "*" : client.getNickName();
-        client.printMessage(":" + client.getIrcServerName() + " 391 "
-            + nickName + " :" + now);
+        client.printReply(ReplyEncoder.Numeric.TIME, null, now.toString());
     }
 
     private void info() {
         final String infoMessage = "This server is the largest program I've ever witten - 210025499";
-        String nickName = (client.getNickName() == null) ? "*" : client.getNickName();
-        client.printMessage(":" + client.getIrcServerName() + " 371 " + nickName + " :" + infoMessage);
+        client.printReply(ReplyEncoder.Numeric.INFO, null, infoMessage);
     }
 
-    private String createErrorMessage(String errorText) {
-        String errorMessage = ":" + client.getIrcServerName() + " 400" + " * :" + errorText;
-        if (client.getNickName() != null) {
-            errorMessage = errorMessage.replace("*", client.getNickName());
-        }
-        return errorMessage;
+    private void printError(String errorText) {
+        client.printReply(ReplyEncoder.Numeric.ERROR, null, errorText);
     }
 
 }
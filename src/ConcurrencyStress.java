@@ -0,0 +1,467 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/** Stress tests the shared state of Channel and IrcServer by running many clients
+ *  concurrently, each on its own ClientThread as it would be in production, issuing
+ *  interleaved NICK, JOIN, PART, PRIVMSG and QUIT commands.
+ *
+ *  <p>Clients are registered one at a time, then all of them run their commands at once.
+ *  Afterwards it checks that no client thread threw, that every message sent to a stable
+ *  channel member or by nickname reached its recipient exactly once, that no message was
+ *  delivered twice, that the nickname index maps each client's current nickname, and
+ *  only that nickname, back to that client, and that connectedClients and each channel
+ *  hold exactly the clients that should still be there. The process exits with status 1
+ *  if any check fails.
+ */
+public class ConcurrencyStress {
+    /** Clients that stay in the stress channel and never change nickname. */
+    private static final int STABLE_CLIENTS = 16;
+    /** Clients that repeatedly rename, join, part and finally may quit. */
+    private static final int CHURN_CLIENTS = 32;
+    /** Messages each stable client sends to the stress channel. */
+    private static final int MESSAGES_PER_CLIENT = 200;
+    /** Rounds of commands each churning client issues. */
+    private static final int CHURN_ROUNDS = 50;
+    private static final long TIMEOUT_MILLIS = 30000;
+
+    private final String channelName;
+    private final IrcServer server;
+    private final ConcurrentLinkedQueue<Throwable> thrown = new ConcurrentLinkedQueue<Throwable>();
+    private final ArrayList<String> failures = new ArrayList<String>();
+
+    private ConcurrencyStress(int iteration) {
+        channelName = "#stress" + iteration;
+        server = new IrcServer("stress", 0);
+    }
+
+    /** Runs the stress test the given number of times, each with a fresh IrcServer.
+     *  @param  args Optionally, the number of iterations to run
+     *  @throws InterruptedException if interrupted while waiting for clients
+     */
+    public static void main(String[] args) throws InterruptedException {
+        final int iterations = (args.length > 0) ? Integer.parseInt(args[0]) : 1;
+        PrintStream console = System.out;
+        int failedIterations = 0;
+
+        for (int i = 1; i <= iterations; i++) {
+            ConcurrencyStress stress = new ConcurrencyStress(i);
+            // the server logs every PRIVMSG target, which would drown the results
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            try {
+                stress.run();
+            } finally {
+                System.setOut(console);
+            }
+            if (stress.failures.isEmpty()) {
+                System.out.println("Iteration " + i + ": passed");
+            } else {
+                failedIterations++;
+                System.out.println("Iteration " + i + ": " + stress.failures.size() + " failures");
+                for (String failure : stress.failures) {
+                    System.out.println("    " + failure);
+                }
+            }
+        }
+
+        System.out.println((iterations - failedIterations) + " of " + iterations + " iterations passed");
+        if (failedIterations > 0) {
+            System.exit(1);
+        }
+    }
+
+    private void run() throws InterruptedException {
+        ArrayList<FakeClient> stable = new ArrayList<FakeClient>();
+        ArrayList<FakeClient> churn = new ArrayList<FakeClient>();
+
+        // set up one client at a time, so that only the stress phase runs concurrently
+        for (int i = 0; i < STABLE_CLIENTS; i++) {
+            FakeClient client = connect("s" + i);
+            client.send("JOIN " + channelName);
+            stable.add(client);
+            if (!awaitAll(List.of(client), "setup")) {
+                reportThrown();
+                return;
+            }
+        }
+        for (int i = 0; i < CHURN_CLIENTS; i++) {
+            FakeClient client = connect("c" + i);
+            churn.add(client);
+            if (!awaitAll(List.of(client), "setup")) {
+                reportThrown();
+                return;
+            }
+        }
+
+        // queue every command before any is processed, so all clients run together
+        for (FakeClient client : stable) {
+            for (int k = 0; k < MESSAGES_PER_CLIENT; k++) {
+                client.send("PRIVMSG " + channelName + " :m-" + client.nickName + "-" + k);
+            }
+        }
+        for (int i = 0; i < CHURN_CLIENTS; i++) {
+            FakeClient client = churn.get(i);
+            String ownChannel = channelName + "c" + i;
+            for (int round = 0; round < CHURN_ROUNDS; round++) {
+                client.previousNickNames.add(client.nickName);
+                client.nickName = "c" + i + "r" + round;
+                client.send("NICK " + client.nickName);
+                client.send("JOIN " + channelName);
+                client.send("JOIN " + ownChannel);
+                client.send("PRIVMSG " + channelName + " :x-" + client.nickName);
+                client.send("PRIVMSG s" + (round % STABLE_CLIENTS) + " :d-" + client.nickName);
+                client.send("NAMES " + channelName);
+                client.send("PART " + channelName);
+            }
+            if (i % 2 == 0) {
+                client.send("QUIT");
+                client.quit = true;
+            }
+        }
+
+        ArrayList<FakeClient> remaining = new ArrayList<FakeClient>(stable);
+        for (FakeClient client : churn) {
+            if (!client.quit) {
+                remaining.add(client);
+            }
+        }
+        // one deadline covers both waits, so a failing iteration only times out once
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        boolean finished = awaitAll(remaining, "done", deadline);
+        // quitting clients never answer PING, so wait for them to close their connection
+        for (FakeClient client : churn) {
+            if (client.quit && !client.input.awaitClosed(deadline)) {
+                failures.add(client.nickName + " did not finish quitting");
+                finished = false;
+            }
+        }
+
+        if (!finished) {
+            failures.add("not every client finished; the checks below include its lost work");
+        }
+        reportThrown();
+        checkDeliveries(stable, churn);
+        checkNickIndex(remaining, churn);
+        checkMembership(stable, churn);
+    }
+
+    private void reportThrown() {
+        for (Throwable t : thrown) {
+            String location = "";
+            // report where the server code was, rather than inside the collection that threw
+            for (StackTraceElement frame : t.getStackTrace()) {
+                if (!frame.getClassName().startsWith("java.")) {
+                    location = " at " + frame;
+                    break;
+                }
+            }
+            failures.add("client thread threw " + t + location);
+        }
+    }
+
+    /** Checks that each stable client received every channel message sent by stable
+     *  clients and every message sent to its nickname exactly once, and that no client
+     *  received any message more than once.
+     */
+    private void checkDeliveries(List<FakeClient> stable, List<FakeClient> churn) {
+        HashMap<String, Integer> directMessages = new HashMap<String, Integer>();
+        for (int round = 0; round < CHURN_ROUNDS; round++) {
+            directMessages.merge("s" + (round % STABLE_CLIENTS), churn.size(), Integer::sum);
+        }
+
+        for (FakeClient client : stable) {
+            Map<String, Integer> received = client.output.messageCounts();
+            int missing = 0;
+            for (FakeClient sender : stable) {
+                for (int k = 0; k < MESSAGES_PER_CLIENT; k++) {
+                    if (!received.containsKey("m-" + sender.nickName + "-" + k)) {
+                        missing++;
+                    }
+                }
+            }
+            if (missing > 0) {
+                failures.add(client.nickName + " missed " + missing + " of "
+                    + (stable.size() * MESSAGES_PER_CLIENT) + " channel messages");
+            }
+            int direct = 0;
+            for (String id : received.keySet()) {
+                if (id.startsWith("d-")) {
+                    direct += received.get(id);
+                }
+            }
+            int expected = directMessages.getOrDefault(client.nickName, 0);
+            if (direct != expected) {
+                failures.add(client.nickName + " received " + direct + " of " + expected
+                    + " direct messages");
+            }
+        }
+
+        ArrayList<FakeClient> everyone = new ArrayList<FakeClient>(stable);
+        everyone.addAll(churn);
+        for (FakeClient client : everyone) {
+            int duplicated = 0;
+            for (int count : client.output.messageCounts().values()) {
+                if (count > 1) {
+                    duplicated++;
+                }
+            }
+            if (duplicated > 0) {
+                failures.add(client.nickName + " received " + duplicated + " messages more than once");
+            }
+        }
+    }
+
+    /** Checks that the nickname index maps the current nickname of each connected
+     *  client to that client, and that it no longer maps the previous nicknames of
+     *  renamed clients or any nickname of clients that quit to them.
+     */
+    private void checkNickIndex(List<FakeClient> connected, List<FakeClient> churn) {
+        for (FakeClient client : connected) {
+            if (server.getNamedClient(client.nickName) != client.thread) {
+                failures.add("nickname index does not map " + client.nickName + " to its client");
+            }
+        }
+        for (FakeClient client : churn) {
+            ArrayList<String> released = new ArrayList<String>(client.previousNickNames);
+            if (client.quit) {
+                released.add(client.nickName);
+            }
+            int stale = 0;
+            for (String nickName : released) {
+                if (server.getNamedClient(nickName) == client.thread) {
+                    stale++;
+                }
+            }
+            if (stale > 0) {
+                failures.add("nickname index still maps " + stale + " released nicknames to "
+                    + client.nickName + (client.quit ? ", which quit" : ""));
+            }
+        }
+    }
+
+    /** Checks connectedClients and channel membership once every client has finished:
+     *  stable clients are still connected and in the stress channel, churning clients
+     *  left the stress channel with their final PART, those still connected remain in
+     *  their own channel, and those that quit are gone from connectedClients and from
+     *  every channel they joined.
+     */
+    private void checkMembership(List<FakeClient> stable, List<FakeClient> churn) {
+        HashSet<ClientThread> connected = server.getConnectedClients();
+        for (FakeClient client : stable) {
+            if (!connected.contains(client.thread)) {
+                failures.add(client.nickName + " is missing from connectedClients");
+            }
+            if (!Channel.clientInChannel(client.thread, channelName)) {
+                failures.add(client.nickName + " is missing from " + channelName);
+            }
+        }
+        for (int i = 0; i < churn.size(); i++) {
+            FakeClient client = churn.get(i);
+            String ownChannel = channelName + "c" + i;
+            if (Channel.clientInChannel(client.thread, channelName)) {
+                failures.add(client.nickName + " is still in " + channelName + " after its final PART");
+            }
+            if (client.quit) {
+                if (connected.contains(client.thread)) {
+                    failures.add(client.nickName + " quit but is still in connectedClients");
+                }
+                if (Channel.clientInChannel(client.thread, ownChannel)) {
+                    failures.add(client.nickName + " quit but is still in " + ownChannel);
+                }
+            } else {
+                if (!connected.contains(client.thread)) {
+                    failures.add(client.nickName + " is missing from connectedClients");
+                }
+                if (!Channel.clientInChannel(client.thread, ownChannel)) {
+                    failures.add(client.nickName + " is missing from " + ownChannel);
+                }
+            }
+        }
+    }
+
+    /** Sends a PING to each client and waits for all of them to answer it. As each client
+     *  processes its commands in order, an answer means all earlier commands are done.
+     */
+    private boolean awaitAll(List<FakeClient> clients, String token) throws InterruptedException {
+        return awaitAll(clients, token, System.currentTimeMillis() + TIMEOUT_MILLIS);
+    }
+
+    private boolean awaitAll(List<FakeClient> clients, String token, long deadline)
+            throws InterruptedException {
+        for (FakeClient client : clients) {
+            client.send("PING " + token);
+        }
+        boolean answered = true;
+        for (FakeClient client : clients) {
+            if (!client.output.awaitLine("PONG " + token, deadline)) {
+                failures.add(client.nickName + " did not answer PING " + token);
+                answered = false;
+            }
+        }
+        return answered;
+    }
+
+    /** Connects a new client and queues its registration under the given nickname. */
+    private FakeClient connect(String nickName) {
+        FakeClient client = new FakeClient();
+        client.nickName = nickName;
+        client.thread = new ClientThread(server, new FakeSocket(client.input, client.output));
+        Thread thread = new Thread(client.thread);
+        thread.setDaemon(true);
+        thread.setUncaughtExceptionHandler((t, e) -> thrown.add(e));
+        thread.start();
+        client.send("NICK " + nickName);
+        client.send("USER " + nickName + " 0 * :" + nickName);
+        return client;
+    }
+
+    /** A client of the stress test, with the streams its ClientThread reads and writes. */
+    private static class FakeClient {
+        private final CommandInput input = new CommandInput();
+        private final ReplyOutput output = new ReplyOutput();
+        private ClientThread thread;
+        private String nickName;
+        private final ArrayList<String> previousNickNames = new ArrayList<String>();
+        private boolean quit;
+
+        private void send(String command) {
+            input.add(command);
+        }
+    }
+
+    /** A socket whose streams are held in memory rather than connected to a client. */
+    private static class FakeSocket extends Socket {
+        private final InputStream in;
+        private final OutputStream out;
+
+        FakeSocket(InputStream in, OutputStream out) {
+            this.in = in;
+            this.out = out;
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return in;
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return out;
+        }
+    }
+
+    /** The input of a ClientThread, which blocks until the stress test sends a command. */
+    private static class CommandInput extends InputStream {
+        private final LinkedBlockingQueue<byte[]> commands = new LinkedBlockingQueue<byte[]>();
+        private byte[] current = new byte[0];
+        private int position;
+        private volatile boolean closed;
+
+        void add(String command) {
+            commands.add((command + "\r\n").getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (closed) {
+                throw new IOException("Stream closed");
+            }
+            try {
+                while (position == current.length) {
+                    current = commands.take();
+                    position = 0;
+                }
+            } catch (InterruptedException ie) {
+                throw new IOException(ie);
+            }
+            return current[position++] & 0xff;
+        }
+
+        /** Returns the bytes of the current command without blocking for the next one,
+         *  as a reader would otherwise wait to fill its whole buffer.
+         */
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            buffer[offset] = (byte) read();
+            int count = Math.min(length - 1, current.length - position);
+            System.arraycopy(current, position, buffer, offset + 1, count);
+            position += count;
+            return count + 1;
+        }
+
+        @Override
+        public int available() {
+            return current.length - position;
+        }
+
+        @Override
+        public synchronized void close() {
+            closed = true;
+            notifyAll();
+        }
+
+        synchronized boolean awaitClosed(long deadline) throws InterruptedException {
+            while (!closed && System.currentTimeMillis() < deadline) {
+                wait(Math.max(1, deadline - System.currentTimeMillis()));
+            }
+            return closed;
+        }
+    }
+
+    /** The output of a ClientThread, split into the lines it sends to the client. */
+    private static class ReplyOutput extends OutputStream {
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+        private final ArrayList<String> lines = new ArrayList<String>();
+
+        @Override
+        public synchronized void write(int b) {
+            if (b == '\n') {
+                String text = new String(line.toByteArray(), StandardCharsets.UTF_8);
+                lines.add(text.endsWith("\r") ? text.substring(0, text.length() - 1) : text);
+                line.reset();
+                notifyAll();
+            } else {
+                line.write(b);
+            }
+        }
+
+        synchronized boolean awaitLine(String expected, long deadline) throws InterruptedException {
+            while (!lines.contains(expected)) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                wait(remaining);
+            }
+            return true;
+        }
+
+        /** Counts how many times each PRIVMSG message text was received.
+         *  @return A map of each message text to the number of times it arrived
+         */
+        synchronized Map<String, Integer> messageCounts() {
+            HashMap<String, Integer> counts = new HashMap<String, Integer>();
+            for (String text : lines) {
+                String[] parts = text.split(" ", 4);
+                if (parts.length == 4 && parts[1].equals("PRIVMSG")) {
+                    counts.merge(parts[3].substring(1), 1, Integer::sum);
+                }
+            }
+            return counts;
+        }
+    }
+}
@@ -1,18 +1,34 @@
 import java.io.IOException;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.HashSet;
 import java.util.HashMap;
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /** This class represents an IrcServer which will allow clients to send message and join channels. */
 public class IrcServer {
     private String name;
     private int portNumber;
     private ServerSocket serverSocket;
+    private ReplyEncoder replyEncoder;
+    private Path snapshotPath;
 
     private HashSet<ClientThread> connectedClients;
     private HashMap<String, ClientThread> namedClients;
+    /** Channels restored from a snapshot, kept for each nickname until it registers again.
+     *  Nicknames that were in no channel are kept with an empty list.
+     */
+    private HashMap<String, ArrayList<Channel>> restoredChannels;
+
+    /** Seconds between each snapshot of this IrcServer's state. */
+    private static final long SNAPSHOT_INTERVAL_SECONDS = 60;
 
     /** Creates a new IrcServer instance with a name and port number
      *  on which the server accepts connections.
@@ -22,12 +38,37 @@ public class IrcServer {
     public IrcServer(String name, int portNumber) {
         this.name = name;
         this.portNumber = portNumber;
+        replyEncoder = new ReplyEncoder(name);
         connectedClients = new HashSet<ClientThread>();
         namedClients = new HashMap<String, ClientThread>();
+        restoredChannels = new HashMap<String, ArrayList<Channel>>();
     }
+
+    /** Creates a new IrcServer instance which periodically saves its channels, channel
+     *  memberships and registered nicknames to a snapshot file, and restores them from
+     *  that file when it starts.
+     *  @param name         The name of the IrcServer
+     *  @param portNumber   The port on which this IrcServer will listen for connections
+     *  @param snapshotPath The file this IrcServer's state is saved to and restored from
+     */
+    public IrcServer(String name, int portNumber, Path snapshotPath) {
+        this(name, portNumber);
+        this.snapshotPath = snapshotPath;
+    }
+
     /** Starts running the IrcServer's connection, listening for clients. */
     public void start() {
         try {
+            if (snapshotPath != null) {
+                try {
+                    restoreSnapshot();
+                } catch (IOException ioe) {
+                    System.out.println("Snapshot could not be restored from " + snapshotPath);
+                } catch (RuntimeException re) {
+                    System.out.println("Snapshot could not be restored from " + snapshotPath + ": " + re);
+                }
+                scheduleSnapshots();
+            }
             serverSocket = new ServerSocket(portNumber);
             for (;;) {
                 Socket connection = serverSocket.accept();
@@ -42,12 +83,142 @@ public class IrcServer {
             System.out.println("Server socket could not be established.");
         }
     }
+
+    /** Restores channels and channel memberships from this IrcServer's snapshot file,
+     *  if one exists. Must be called before any clients connect.
+     *  @throws IOException if the snapshot file cannot be read
+     */
+    public void restoreSnapshot() throws IOException {
+        if (!Files.exists(snapshotPath)) {
+            return;
+        }
+        ServerSnapshot snapshot = ServerSnapshot.readFrom(snapshotPath);
+        HashMap<String, Channel> channels
+            = new HashMap<String, Channel>(Registry.capacityFor(snapshot.getChannelMembers().size()));
+        for (Map.Entry<String, int[]> entry : snapshot.getChannelMembers().entrySet()) {
+            String channelName = entry.getKey();
+            channels.put(channelName, new Channel(channelName, entry.getValue().length));
+        }
+        final int nickNameCount = snapshot.getNickNames().size();
+        synchronized (Registry.LOCK) {
+            namedClients = new HashMap<String, ClientThread>(Registry.capacityFor(nickNameCount));
+            restoredChannels = snapshot.channelsByNickName(channels);
+        }
+        System.out.println("Restored " + channels.size() + " channels and "
+            + nickNameCount + " nicknames from " + snapshotPath);
+    }
+
+    /** Saves this IrcServer's state every SNAPSHOT_INTERVAL_SECONDS, and once more
+     *  when the server shuts down.
+     */
+    private void scheduleSnapshots() {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::saveSnapshot, SNAPSHOT_INTERVAL_SECONDS,
+            SNAPSHOT_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(this::saveSnapshot));
+    }
+
+    /** Writes this IrcServer's state to its snapshot file. Any failure is reported
+     *  rather than thrown, so that later scheduled snapshots still run. Synchronized so
+     *  that the shutdown hook and a scheduled save never write the same file at once.
+     */
+    public synchronized void saveSnapshot() {
+        try {
+            takeSnapshot().writeTo(snapshotPath);
+        } catch (IOException ioe) {
+            System.out.println("Snapshot could not be written to " + snapshotPath);
+        } catch (RuntimeException re) {
+            System.out.println("Snapshot could not be taken: " + re);
+        }
+    }
+
+    /** Captures the channels, channel memberships and registered nicknames of this IrcServer,
+     *  including restored memberships of nicknames that have not registered again yet.
+     *  The registries are copied while holding Registry.LOCK, so the snapshot is consistent.
+     *  @return A snapshot of this IrcServer's state
+     */
+    public ServerSnapshot takeSnapshot() {
+        synchronized (Registry.LOCK) {
+            ServerSnapshot snapshot = new ServerSnapshot(namedClients.size() + restoredChannels.size(),
+                Channel.getChannelNames().size());
+            HashMap<String, Integer> nickNameIndexes = new HashMap<String, Integer>(
+                Registry.capacityFor(namedClients.size() + restoredChannels.size()));
+            for (Map.Entry<String, ClientThread> entry : namedClients.entrySet()) {
+                ClientThread client = entry.getValue();
+                // skip nicknames the client has since changed
+                if (client.isRegistered() && entry.getKey().equals(client.getNickName())) {
+                    nickNameIndexes.put(entry.getKey(), snapshot.addNickName(entry.getKey()));
+                }
+            }
+
+            HashMap<Channel, LinkedHashSet<Integer>> channelMembers
+                = new HashMap<Channel, LinkedHashSet<Integer>>();
+            for (Map.Entry<String, ArrayList<Channel>> entry : restoredChannels.entrySet()) {
+                Integer index = nickNameIndexes.get(entry.getKey());
+                if (index == null) {
+                    index = snapshot.addNickName(entry.getKey());
+                    nickNameIndexes.put(entry.getKey(), index);
+                }
+                for (Channel channel : entry.getValue()) {
+                    channelMembers.computeIfAbsent(channel, c -> new LinkedHashSet<Integer>()).add(index);
+                }
+            }
+
+            for (String channelName : Channel.getChannelNames()) {
+                Channel channel = Channel.getChannelByName(channelName);
+                LinkedHashSet<Integer> members
+                    = channelMembers.getOrDefault(channel, new LinkedHashSet<Integer>());
+                for (ClientThread client : Channel.getClients(channel)) {
+                    Integer index = nickNameIndexes.get(client.getNickName());
+                    if (index != null) {
+                        members.add(index);
+                    }
+                }
+                snapshot.addChannel(channelName, members.stream().mapToInt(Integer::intValue).toArray());
+            }
+            return snapshot;
+        }
+    }
+
+    /** Rejoins a registered client to the channels its nickname was a member of when
+     *  the snapshot this IrcServer was restored from was taken. Called when a client
+     *  registers, and when a registered client changes its nickname.
+     *  @param client The registered client
+     */
+    public void rejoinRestoredChannels(ClientThread client) {
+        ArrayList<Channel> channels;
+        synchronized (Registry.LOCK) {
+            channels = restoredChannels.remove(client.getNickName());
+        }
+        if (channels == null) {
+            return;
+        }
+        for (Channel channel : channels) {
+            client.addToChannel(channel);
+            // a client already in the channel has been told of its JOIN
+            if (channel.addClient(client)) {
+                channel.notifyAll(client, "JOIN");
+            }
+        }
+    }
+
     /** Gets the name of the IrcServer.
      *  @return The name of this IrcServer
      */
     public String getName() {
         return name;
     }
+
+    /** Gets the encoder used for numeric replies sent by this IrcServer.
+     *  @return The reply encoder of this IrcServer
+     */
+    public ReplyEncoder getReplyEncoder() {
+        return replyEncoder;
+    }
     /** Removes a client from this IrcServer.
      *  @param client The client to be forgotten
      */
@@ -66,7 +237,9 @@ public class IrcServer {
      *  @param client   The client to be added to the IrcServer
      */
     public void addNamedClient(String nickName, ClientThread client) {
-        namedClients.put(nickName, client);
+        synchronized (Registry.LOCK) {
+            namedClients.put(nickName, client);
+        }
     }
 
     /** Gets a client by their name.
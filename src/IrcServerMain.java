@@ -1,3 +1,5 @@
+import java.nio.file.Paths;
+
 /** Main class which will serve as the entry point to the program. */
 public class IrcServerMain {
     /** Checks if the program arguments provided are valid for starting the program.
@@ -5,7 +7,7 @@ public class IrcServerMain {
      *  @throws IllegalArgumentException if the provided arguments are invalid
      */
     private static void validateArguments(String[] args) throws IllegalArgumentException {
-        if (args.length != 2) {
+        if (args.length != 2 && args.length != 3) {
             throw new IllegalArgumentException();
         }
 
@@ -28,11 +30,13 @@ public class IrcServerMain {
             validateArguments(args);
             String name = args[0];
             int portNumber = Integer.parseInt(args[1]);
-            IrcServer server = new IrcServer(name, portNumber);
+            IrcServer server = (args.length == 3)
+                ? new IrcServer(name, portNumber, Paths.get(args[2]))
+                : new IrcServer(name, portNumber);
             server.start();
 
         } catch (IllegalArgumentException e) {
-            System.out.println("Usage: java IrcServerMain <server_name> <port>");
+            System.out.println("Usage: java IrcServerMain <server_name> <port> [snapshot_file]");
         }
     }
 
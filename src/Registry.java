@@ -0,0 +1,22 @@
+/** Shared lock and sizing for the channel and nickname registries held by
+ *  Channel and IrcServer.
+ */
+public final class Registry {
+    /** Held while a channel, channel membership or nickname is added or removed,
+     *  and while the registries are copied into a ServerSnapshot.
+     */
+    public static final Object LOCK = new Object();
+
+    private Registry() {
+    }
+
+    /** Gets the initial capacity of a hash based collection that will hold
+     *  the given number of entries without being resized.
+     *  @param  size The number of entries the collection will hold
+     *  @return The initial capacity for the collection
+     */
+    public static int capacityFor(int size) {
+        final float loadFactor = 0.75f;
+        return (int) (size / loadFactor) + 1;
+    }
+}
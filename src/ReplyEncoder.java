@@ -0,0 +1,217 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/** Encodes numeric server replies directly into a client's outbound byte buffer.
+ *  The server prefix and numeric codes are encoded once, so a reply is written
+ *  without first being assembled into a String.
+ */
+public class ReplyEncoder {
+
+    /** The numeric replies sent by an IrcServer. */
+    public enum Numeric {
+        WELCOME("001"),
+        LIST("322"),
+        LIST_END("323"),
+        NAMES("353"),
+        INFO("371"),
+        TIME("391"),
+        ERROR("400");
+
+        /** The numeric code, surrounded by spaces. */
+        private final byte[] bytes;
+
+        Numeric(String code) {
+            bytes = encode(" " + code + " ");
+        }
+    }
+
+    /** Nickname used as the target of replies to clients without a nickname. */
+    private static final byte[] NO_NICK = encode("*");
+    private static final byte[] WELCOME_TEXT = encode("Welcome to the IRC network, ");
+    private static final byte[] NAMES_PARAM = encode(" =");
+
+    private static final byte[] TRAILING_SEPARATOR = encode(" :");
+    private static final byte[] LINE_SEPARATOR = encode(System.lineSeparator());
+    private static final int ASCII_LIMIT = 0x80;
+    private static final int BUFFER_SIZE = 8192;
+
+    /** The server name prefixed with a colon. */
+    private final byte[] serverPrefix;
+
+    /** Creates a new ReplyEncoder for the server with the given name.
+     *  @param serverName The name of the IrcServer sending the replies
+     */
+    public ReplyEncoder(String serverName) {
+        serverPrefix = encode(":" + serverName);
+    }
+
+    /** Encodes a string as it will be written to a client.
+     *  @param  text The string to be encoded
+     *  @return The encoded bytes of the string
+     */
+    public static byte[] encode(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Writes the prefix of a reply, of the form ":server NNN target".
+     *  @param out     The buffer the reply is written to
+     *  @param numeric The numeric reply being sent
+     *  @param target  The encoded nickname of the client receiving the reply,
+     *                 or null if the client has no nickname
+     *  @throws IOException if the buffer cannot be written out
+     */
+    public void writePrefix(Buffer out, Numeric numeric, byte[] target) throws IOException {
+        out.write(serverPrefix);
+        out.write(numeric.bytes);
+        out.write((target == null) ? NO_NICK : target);
+    }
+
+    /** Writes the RPL_WELCOME reply sent when a client registers.
+     *  @param out    The buffer the reply is written to
+     *  @param target The encoded nickname of the client that registered
+     *  @throws IOException if the buffer cannot be written out
+     */
+    public void writeWelcome(Buffer out, byte[] target) throws IOException {
+        writePrefix(out, Numeric.WELCOME, target);
+        out.write(TRAILING_SEPARATOR);
+        out.write(WELCOME_TEXT);
+        out.write(target);
+        writeEnd(out);
+    }
+
+    /** Writes the NAMES reply for a channel, listing the nickname of each member.
+     *  @param out         The buffer the reply is written to
+     *  @param target      The encoded nickname of the client receiving the reply
+     *  @param channelName The name of the channel
+     *  @param members     The clients connected to the channel
+     *  @throws IOException if the buffer cannot be written out
+     */
+    public void writeNames(Buffer out, byte[] target, String channelName,
+            Iterable<ClientThread> members) throws IOException {
+        writePrefix(out, Numeric.NAMES, target);
+        out.write(NAMES_PARAM);
+        writeParam(out, channelName);
+        out.write(TRAILING_SEPARATOR);
+        boolean first = true;
+        for (ClientThread member : members) {
+            if (!first) {
+                out.write(' ');
+            }
+            byte[] nickBytes = member.getNickBytes();
+            out.write((nickBytes == null) ? NO_NICK : nickBytes);
+            first = false;
+        }
+        writeEnd(out);
+    }
+
+    /** Writes a middle parameter of a reply, preceded by a space.
+     *  @param out   The buffer the reply is written to
+     *  @param param The parameter to be written
+     *  @throws IOException if the buffer cannot be written out
+     */
+    public static void writeParam(Buffer out, String param) throws IOException {
+        out.write(' ');
+        out.writeText(param);
+    }
+
+    /** Writes the trailing parameter of a reply, preceded by " :".
+     *  @param out      The buffer the reply is written to
+     *  @param trailing The parameter to be written
+     *  @throws IOException if the buffer cannot be written out
+     */
+    public static void writeTrailing(Buffer out, String trailing) throws IOException {
+        out.write(TRAILING_SEPARATOR);
+        out.writeText(trailing);
+    }
+
+    /** Ends a reply and flushes it to the client.
+     *  @param out The buffer the reply is written to
+     *  @throws IOException if the buffer cannot be written out
+     */
+    public static void writeEnd(Buffer out) throws IOException {
+        out.write(LINE_SEPARATOR);
+        out.flush();
+    }
+
+    /** The outbound byte buffer of a client, shared by its replies and its PrintWriter.
+     *  Unlike BufferedOutputStream it takes no lock, so it must only be used while
+     *  holding the lock of the ClientThread that owns it.
+     */
+    public static class Buffer extends OutputStream {
+        private final OutputStream out;
+        private final byte[] bytes = new byte[BUFFER_SIZE];
+        private int count;
+
+        /** Creates a new Buffer in front of a client's output stream.
+         *  @param out The stream the buffered bytes are written to
+         */
+        public Buffer(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == bytes.length) {
+                drain();
+            }
+            bytes[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int offset, int length) throws IOException {
+            if (length >= bytes.length) {
+                drain();
+                out.write(b, offset, length);
+                return;
+            }
+            if (length > bytes.length - count) {
+                drain();
+            }
+            System.arraycopy(b, offset, bytes, count, length);
+            count += length;
+        }
+
+        /** Writes text into the buffer. ASCII characters are copied as they are,
+         *  anything else falls back to encoding the remainder of the text.
+         *  @param text The text to be written
+         *  @throws IOException if the buffer cannot be written out
+         */
+        public void writeText(String text) throws IOException {
+            final int length = text.length();
+            for (int i = 0; i < length; i++) {
+                char c = text.charAt(i);
+                if (c >= ASCII_LIMIT) {
+                    write(encode(text.substring(i)));
+                    return;
+                }
+                if (count == bytes.length) {
+                    drain();
+                }
+                bytes[count++] = (byte) c;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            drain();
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                flush();
+            } finally {
+                out.close();
+            }
+        }
+
+        private void drain() throws IOException {
+            if (count > 0) {
+                out.write(bytes, 0, count);
+                count = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,179 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** A snapshot of the channels, channel memberships and registered nicknames of an
+ *  IrcServer, which can be written to a file and read back when the server restarts.
+ *
+ *  <p>The file begins with the number of nicknames and channels, so the registries can be
+ *  sized before they are filled. It then holds a table of nicknames, followed by each
+ *  channel's name and the indexes of its members in that table.
+ */
+public class ServerSnapshot {
+    private static final int MAGIC = 0x49524353;
+    private static final int VERSION = 1;
+    /** The fewest bytes a nickname takes in the file, its length prefix. */
+    private static final int MIN_NICKNAME_BYTES = 2;
+    /** The fewest bytes a channel takes in the file, its name and member count prefixes. */
+    private static final int MIN_CHANNEL_BYTES = 2 + Integer.BYTES;
+
+    /** Registered nicknames, in the order they are indexed in the file. */
+    private ArrayList<String> nickNames;
+    /** Maps each channel name to the indexes of its members' nicknames. */
+    private LinkedHashMap<String, int[]> channelMembers;
+
+    /** Creates an empty snapshot. */
+    public ServerSnapshot() {
+        nickNames = new ArrayList<String>();
+        channelMembers = new LinkedHashMap<String, int[]>();
+    }
+
+    /** Creates an empty snapshot, sized for the given number of nicknames and channels.
+     *  @param nickNameCount The number of nicknames the snapshot will hold
+     *  @param channelCount  The number of channels the snapshot will hold
+     */
+    public ServerSnapshot(int nickNameCount, int channelCount) {
+        nickNames = new ArrayList<String>(nickNameCount);
+        channelMembers = new LinkedHashMap<String, int[]>(Registry.capacityFor(channelCount));
+    }
+
+    /** Adds a registered nickname to this snapshot.
+     *  @param  nickName The nickname to be added
+     *  @return The index of the nickname, used to refer to it in channel memberships
+     */
+    public int addNickName(String nickName) {
+        nickNames.add(nickName);
+        return nickNames.size() - 1;
+    }
+
+    /** Adds a channel and its members to this snapshot.
+     *  @param channelName The name of the channel
+     *  @param members     The indexes of the nicknames of the channel's members
+     */
+    public void addChannel(String channelName, int[] members) {
+        channelMembers.put(channelName, members);
+    }
+
+    /** Gets the registered nicknames in this snapshot.
+     *  @return The nicknames, indexed as they are in channel memberships
+     */
+    public ArrayList<String> getNickNames() {
+        return nickNames;
+    }
+
+    /** Gets the channels in this snapshot.
+     *  @return A map of each channel name to the nickname indexes of its members
+     */
+    public LinkedHashMap<String, int[]> getChannelMembers() {
+        return channelMembers;
+    }
+
+    /** Writes this snapshot to a file. The snapshot is written to a temporary file
+     *  first, so an interrupted write never replaces the previous snapshot.
+     *  @param  path The file the snapshot will be written to
+     *  @throws IOException if the file cannot be written
+     */
+    public void writeTo(Path path) throws IOException {
+        Path tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(tempPath)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(nickNames.size());
+            out.writeInt(channelMembers.size());
+            for (String nickName : nickNames) {
+                out.writeUTF(nickName);
+            }
+            for (Map.Entry<String, int[]> channel : channelMembers.entrySet()) {
+                out.writeUTF(channel.getKey());
+                int[] members = channel.getValue();
+                out.writeInt(members.length);
+                for (int member : members) {
+                    out.writeInt(member);
+                }
+            }
+        }
+        Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** Reads a snapshot from a file.
+     *  @param  path The file the snapshot will be read from
+     *  @return The snapshot stored in the file
+     *  @throws IOException if the file cannot be read, or is not a valid snapshot
+     */
+    public static ServerSnapshot readFrom(Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a valid server snapshot: " + path);
+            }
+            // every count is bounded by the bytes its entries would need in this file
+            final long fileSize = Files.size(path);
+            final int nickNameCount = readCount(in, fileSize / MIN_NICKNAME_BYTES, path);
+            final int channelCount = readCount(in, fileSize / MIN_CHANNEL_BYTES, path);
+            ServerSnapshot snapshot = new ServerSnapshot(nickNameCount, channelCount);
+            for (int i = 0; i < nickNameCount; i++) {
+                snapshot.nickNames.add(in.readUTF());
+            }
+            for (int i = 0; i < channelCount; i++) {
+                String channelName = in.readUTF();
+                int[] members = new int[readCount(in, fileSize / Integer.BYTES, path)];
+                for (int j = 0; j < members.length; j++) {
+                    members[j] = in.readInt();
+                    if (members[j] < 0 || members[j] >= nickNameCount) {
+                        throw new IOException("Not a valid server snapshot: " + path);
+                    }
+                }
+                snapshot.channelMembers.put(channelName, members);
+            }
+            return snapshot;
+        }
+    }
+
+    /** Reads a count from a snapshot file, rejecting one that is negative or larger than
+     *  the file could hold.
+     *  @param  in       The stream the snapshot is read from
+     *  @param  maxCount The largest count the file could hold
+     *  @param  path     The file the snapshot is read from
+     *  @return The count read
+     *  @throws IOException if the count cannot be read, or is not valid
+     */
+    private static int readCount(DataInputStream in, long maxCount, Path path) throws IOException {
+        int count = in.readInt();
+        if (count < 0 || count > maxCount) {
+            throw new IOException("Not a valid server snapshot: " + path);
+        }
+        return count;
+    }
+
+    /** Groups the channel memberships in this snapshot by nickname. Every nickname in
+     *  the snapshot is included, with an empty list if it was in no channel.
+     *  @param  channels Maps each channel name to the restored Channel
+     *  @return A map of each nickname to the channels it was a member of
+     */
+    public HashMap<String, ArrayList<Channel>> channelsByNickName(Map<String, Channel> channels) {
+        HashMap<String, ArrayList<Channel>> memberships
+            = new HashMap<String, ArrayList<Channel>>(Registry.capacityFor(nickNames.size()));
+        for (String nickName : nickNames) {
+            memberships.put(nickName, new ArrayList<Channel>());
+        }
+        for (Map.Entry<String, int[]> entry : channelMembers.entrySet()) {
+            Channel channel = channels.get(entry.getKey());
+            for (int member : entry.getValue()) {
+                String nickName = nickNames.get(member);
+                memberships.get(nickName).add(channel);
+            }
+        }
+        return memberships;
+    }
+}
@@ -0,0 +1,83 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/** Measures how long an IrcServer takes to restore its state from a snapshot
+ *  holding one million channel memberships.
+ *
+ *  <p>Each restore runs in a fresh JVM, as it would when the server restarts, so the
+ *  times include class loading and interpreted code rather than a warmed-up JIT.
+ */
+public class SnapshotBenchmark {
+    private static final int NICKNAMES = 100000;
+    private static final int CHANNELS = 1000;
+    private static final int MEMBERS_PER_CHANNEL = 1000;
+    private static final int RUNS = 5;
+    private static final long NANOS_PER_MILLI = 1000000;
+    private static final String RESTORE_ARGUMENT = "--restore";
+
+    /** Builds a snapshot of NICKNAMES nicknames spread across CHANNELS channels.
+     *  @return The snapshot to be restored
+     */
+    private static ServerSnapshot buildSnapshot() {
+        ServerSnapshot snapshot = new ServerSnapshot(NICKNAMES, CHANNELS);
+        for (int i = 0; i < NICKNAMES; i++) {
+            snapshot.addNickName("nick" + i);
+        }
+        for (int i = 0; i < CHANNELS; i++) {
+            int[] members = new int[MEMBERS_PER_CHANNEL];
+            for (int j = 0; j < MEMBERS_PER_CHANNEL; j++) {
+                members[j] = (i * MEMBERS_PER_CHANNEL + j) % NICKNAMES;
+            }
+            snapshot.addChannel("#channel" + i, members);
+        }
+        return snapshot;
+    }
+
+    /** Restores the snapshot once in this JVM and prints the time taken.
+     *  @param  snapshotPath The snapshot file to be restored
+     *  @throws IOException if the snapshot file cannot be read
+     */
+    private static void restoreOnce(Path snapshotPath) throws IOException {
+        IrcServer server = new IrcServer("benchmark", 0, snapshotPath);
+        long start = System.nanoTime();
+        server.restoreSnapshot();
+        long elapsed = System.nanoTime() - start;
+        System.out.println("Cold restore took " + (elapsed / NANOS_PER_MILLI) + " ms");
+    }
+
+    /** Writes the benchmark snapshot to a temporary file, then restores it RUNS times,
+     *  each in a new JVM, printing the time taken by each restore.
+     *  @param  args Unused, other than by the JVMs started to restore the snapshot
+     *  @throws IOException if the snapshot file cannot be written or read
+     *  @throws InterruptedException if interrupted while waiting for a restore
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length == 2 && args[0].equals(RESTORE_ARGUMENT)) {
+            restoreOnce(Paths.get(args[1]));
+            return;
+        }
+
+        Path snapshotPath = Files.createTempFile("irc-snapshot", ".bin");
+        try {
+            buildSnapshot().writeTo(snapshotPath);
+            System.out.println("Snapshot of " + (CHANNELS * MEMBERS_PER_CHANNEL) + " memberships: "
+                + Files.size(snapshotPath) + " bytes");
+
+            String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+            String classPath = System.getProperty("java.class.path", ".");
+            for (int run = 1; run <= RUNS; run++) {
+                System.out.print("Run " + run + ": ");
+                Process restore = new ProcessBuilder(java, "-cp", classPath, "SnapshotBenchmark",
+                    RESTORE_ARGUMENT, snapshotPath.toString())
+                    .redirectOutput(ProcessBuilder.Redirect.INHERIT)
+                    .redirectError(ProcessBuilder.Redirect.INHERIT)
+                    .start();
+                restore.waitFor();
+            }
+        } finally {
+            Files.deleteIfExists(snapshotPath);
+        }
+    }
+}